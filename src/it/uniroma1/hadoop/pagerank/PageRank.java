@@ -30,10 +30,9 @@ package it.uniroma1.hadoop.pagerank;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
-import java.util.HashSet;
-import java.util.Set;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.DoubleWritable;
@@ -41,8 +40,13 @@ import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormatCounter;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.MRConfig;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
 
 import it.uniroma1.hadoop.pagerank.job1.PageRankJob1Mapper;
 import it.uniroma1.hadoop.pagerank.job1.PageRankJob1Reducer;
@@ -51,7 +55,7 @@ import it.uniroma1.hadoop.pagerank.job2.PageRankJob2Reducer;
 import it.uniroma1.hadoop.pagerank.job3.PageRankJob3Mapper;
 
 
-public class PageRank {
+public class PageRank extends Configured implements Tool {
     
     // args keys
     private static final String KEY_DAMPING = "--damping";
@@ -69,33 +73,70 @@ public class PageRank {
     private static final String KEY_HELP = "--help";
     private static final String KEY_HELP_ALIAS = "-h"; 
     
+    // configuration keys (can be given as generic options: -D <key>=<value>)
+    public static final String CONF_DAMPING = "pagerank.damping";
+    public static final String CONF_AUTO_MODE = "pagerank.auto.mode";
+    public static final String CONF_LOCAL_MAX_BYTES = "pagerank.local.max.bytes";
+    public static final String CONF_UBER_MAX_BYTES = "pagerank.uber.max.bytes";
+    
+    // configuration defaults
+    public static final double DEFAULT_DAMPING = 0.85;
+    public static final boolean DEFAULT_AUTO_MODE = true;
+    public static final long DEFAULT_LOCAL_MAX_BYTES = 16L * 1024 * 1024;
+    public static final long DEFAULT_UBER_MAX_BYTES = 128L * 1024 * 1024;
+    
+    // internal configuration keys (set by the driver)
+    public static final String CONF_NODES = "pagerank.nodes";
+    
     // utility attributes
     public static NumberFormat NF = new DecimalFormat("00");
-    public static Set<String> NODES = new HashSet<String>();
     public static String LINKS_SEPARATOR = "|";
     
     // configuration values
-    public static Double DAMPING = 0.85;
+    public static Double DAMPING = DEFAULT_DAMPING;
     public static int ITERATIONS = 2;
     public static String IN_PATH = "";
     public static String OUT_PATH = "";
     
+    // counters
+    public enum Counter { NODES }
+    
     
     /**
      * This is the main class run against the Hadoop cluster.
-     * It will run all the jobs needed for the PageRank algorithm.
+     * Generic Hadoop options (-D, -conf, -fs, ...) are handled by the ToolRunner
+     * and end up in the configuration shared by all the jobs.
      */
     public static void main(String[] args) throws Exception {
+        System.exit(ToolRunner.run(new Configuration(), new PageRank(), args));
+    }
+    
+    /**
+     * It will run all the jobs needed for the PageRank algorithm.
+     * 
+     * @param args the command line arguments left after generic options parsing
+     */
+    @Override
+    public int run(String[] args) throws Exception {
         
         try {
             
+            // damping factor given as generic option (overridden by the command line argument)
+            PageRank.DAMPING = Math.max(Math.min(getConf().getDouble(CONF_DAMPING, PageRank.DAMPING), 1.0), 0.0);
+            
             // parse input parameters
             for (int i = 0; i < args.length; i += 2) {
                
                 String key = args[i];
-                String value = args[i + 1];
                 
                 // NOTE: do not use a switch to keep Java 1.6 compatibility!
+                if (key.equals(KEY_HELP) || key.equals(KEY_HELP_ALIAS)) {
+                    printUsageText(null);
+                    return 0;
+                }
+                
+                String value = args[i + 1];
+                
                 if (key.equals(KEY_DAMPING) || key.equals(KEY_DAMPING_ALIAS)) {
                     // be sure to have a damping factor in the interval [0:1]
                     PageRank.DAMPING = Math.max(Math.min(Double.parseDouble(value), 1.0), 0.0);
@@ -110,28 +151,25 @@ public class PageRank {
                     PageRank.OUT_PATH = value.trim();
                     if (PageRank.OUT_PATH.charAt(PageRank.OUT_PATH.length() - 1) == '/')
                         PageRank.OUT_PATH = PageRank.OUT_PATH.substring(0, PageRank.IN_PATH.length() - 1);
-                } else if (key.equals(KEY_HELP) || key.equals(KEY_HELP_ALIAS)) {
-                    printUsageText(null);
-                    System.exit(0);                        
                 }
             }
             
         } catch (ArrayIndexOutOfBoundsException e) {
             printUsageText(e.getMessage());
-            System.exit(1);
+            return 1;
         } catch (NumberFormatException e) {
             printUsageText(e.getMessage());
-            System.exit(1);
+            return 1;
         }
         
         // check for valid parameters to be set
         if (PageRank.IN_PATH.isEmpty() || PageRank.OUT_PATH.isEmpty()) {
             printUsageText("missing required parameters");
-            System.exit(1);
+            return 1;
         }
         
         // delete output path if it exists already
-        FileSystem fs = FileSystem.get(new Configuration());
+        FileSystem fs = FileSystem.get(getConf());
         if (fs.exists(new Path(PageRank.OUT_PATH)))
             fs.delete(new Path(PageRank.OUT_PATH), true);
         
@@ -142,50 +180,63 @@ public class PageRank {
         System.out.println("Output directory: " + PageRank.OUT_PATH);
         System.out.println("---------------------------");
         
-        Thread.sleep(1000);
-        
-        String inPath = null;;
-        String lastOutPath = null;
-        PageRank pagerank = new PageRank();
+        // the damping factor is read by the tasks from the job configuration
+        getConf().setDouble(CONF_DAMPING, PageRank.DAMPING);
         
         System.out.println("Running Job#1 (graph parsing) ...");
-        boolean isCompleted = pagerank.job1(IN_PATH, OUT_PATH + "/iter00");
-        if (!isCompleted) {
-            System.exit(1);
+        Path in = new Path(IN_PATH);
+        Job job = job1(IN_PATH, OUT_PATH + "/iter00");
+        setExecutionMode(job, in.getFileSystem(getConf()).getContentSummary(in).getLength());
+        if (!job.waitForCompletion(true)) {
+            return 1;
+        }
+        
+        // Job #2 needs the total amount of nodes to initialize the page rank
+        long nodes = job.getCounters().findCounter(Counter.NODES).getValue();
+        if (nodes <= 0) {
+            printUsageText("no nodes found in the input graph");
+            return 1;
         }
         
+        getConf().setLong(CONF_NODES, nodes);
+        
+        String inPath = null;
+        String lastOutPath = null;
+        
         for (int runs = 0; runs < ITERATIONS; runs++) {
+            long size = job.getCounters().findCounter(FileOutputFormatCounter.BYTES_WRITTEN).getValue();
             inPath = OUT_PATH + "/iter" + NF.format(runs);
             lastOutPath = OUT_PATH + "/iter" + NF.format(runs + 1);
             System.out.println("Running Job#2 [" + (runs + 1) + "/" + PageRank.ITERATIONS + "] (PageRank calculation) ...");
-            isCompleted = pagerank.job2(inPath, lastOutPath);
-            if (!isCompleted) {
-                System.exit(1);
+            job = job2(inPath, lastOutPath);
+            setExecutionMode(job, size);
+            if (!job.waitForCompletion(true)) {
+                return 1;
             }
         }
         
         System.out.println("Running Job#3 (rank ordering) ...");
-        isCompleted = pagerank.job3(lastOutPath, OUT_PATH + "/result");
-        if (!isCompleted) {
-            System.exit(1);
+        long size = job.getCounters().findCounter(FileOutputFormatCounter.BYTES_WRITTEN).getValue();
+        job = job3(lastOutPath, OUT_PATH + "/result");
+        setExecutionMode(job, size);
+        if (!job.waitForCompletion(true)) {
+            return 1;
         }
         
         System.out.println("DONE!");
-        System.exit(0);
+        return 0;
     }
     
     /**
-     * This will run the Job #1 (Graph Parsing).
-     * Will parse the graph given as input and initialize the page rank.
+     * This will set up the Job #1 (Graph Parsing).
+     * Will parse the graph given as input and count its nodes.
      * 
      * @param in the directory of the input data
      * @param out the main directory of the output
      */
-    public boolean job1(String in, String out) throws IOException, 
-                                                      ClassNotFoundException, 
-                                                      InterruptedException {
+    public Job job1(String in, String out) throws IOException {
         
-        Job job = Job.getInstance(new Configuration(), "Job #1");
+        Job job = Job.getInstance(getConf(), "Job #1");
         job.setJarByClass(PageRank.class);
         
         // input / mapper
@@ -202,23 +253,21 @@ public class PageRank {
         job.setOutputValueClass(Text.class);
         job.setReducerClass(PageRankJob1Reducer.class);
         
-        return job.waitForCompletion(true);
+        return job;
      
     }
     
     /**
-     * This will run the Job #2 (Rank Calculation).
+     * This will set up the Job #2 (Rank Calculation).
      * It calculates the new ranking and generates the same output format as the input, 
      * so this job can run multiple times (more iterations will increase accuracy).
      * 
      * @param in the directory of the input data
      * @param out the main directory of the output
      */
-    public boolean job2(String in, String out) throws IOException, 
-                                                      ClassNotFoundException, 
-                                                      InterruptedException {
+    public Job job2(String in, String out) throws IOException {
         
-        Job job = Job.getInstance(new Configuration(), "Job #2");
+        Job job = Job.getInstance(getConf(), "Job #2");
         job.setJarByClass(PageRank.class);
         
         // input / mapper
@@ -235,22 +284,20 @@ public class PageRank {
         job.setOutputValueClass(Text.class);
         job.setReducerClass(PageRankJob2Reducer.class);
 
-        return job.waitForCompletion(true);
+        return job;
         
     }
     
     /**
-     * This will run the Job #3 (Rank Ordering).
+     * This will set up the Job #3 (Rank Ordering).
      * It will sort documents according to their page rank value.
      * 
      * @param in the directory of the input data
      * @param out the main directory of the output
      */
-    public boolean job3(String in, String out) throws IOException, 
-                                                      ClassNotFoundException, 
-                                                      InterruptedException {
+    public Job job3(String in, String out) throws IOException {
         
-        Job job = Job.getInstance(new Configuration(), "Job #3");
+        Job job = Job.getInstance(getConf(), "Job #3");
         job.setJarByClass(PageRank.class);
         
         // input / mapper
@@ -266,7 +313,48 @@ public class PageRank {
         job.setOutputKeyClass(DoubleWritable.class);
         job.setOutputValueClass(Text.class);
 
-        return job.waitForCompletion(true);
+        return job;
+        
+    }
+    
+    /**
+     * Run the given job in local or uber mode if its input size is small enough.
+     * 
+     * @param job the job to configure
+     * @param size the size of the job input (in bytes)
+     */
+    public void setExecutionMode(Job job, long size) {
+        
+        Configuration conf = job.getConfiguration();
+        
+        if (!conf.getBoolean(CONF_AUTO_MODE, DEFAULT_AUTO_MODE) || 
+            MRConfig.LOCAL_FRAMEWORK_NAME.equals(conf.get(MRConfig.FRAMEWORK_NAME)))
+            return;
+        
+        if (size <= conf.getLong(CONF_LOCAL_MAX_BYTES, DEFAULT_LOCAL_MAX_BYTES)) {
+            if (!isUserSet(conf, MRConfig.FRAMEWORK_NAME))
+                conf.set(MRConfig.FRAMEWORK_NAME, MRConfig.LOCAL_FRAMEWORK_NAME);
+        } else if (size <= conf.getLong(CONF_UBER_MAX_BYTES, DEFAULT_UBER_MAX_BYTES)) {
+            if (!isUserSet(conf, MRJobConfig.JOB_UBERTASK_ENABLE))
+                conf.setBoolean(MRJobConfig.JOB_UBERTASK_ENABLE, true);
+        }
+        
+    }
+    
+    /**
+     * Tell whether the given key has been set by the user (not by the default or site files).
+     * 
+     * @param conf the configuration to check
+     * @param key the configuration key
+     */
+    private static boolean isUserSet(Configuration conf, String key) {
+        
+        String[] sources = conf.getPropertySources(key);
+        if (sources == null || sources.length == 0)
+            return false;
+        
+        String source = sources[sources.length - 1];
+        return !source.endsWith("-default.xml") && !source.endsWith("-site.xml");
         
     }
     
@@ -282,13 +370,18 @@ public class PageRank {
             System.err.println("ERROR: " + err + ".\n");
         }
        
-        System.out.println("Usage: pagerank.jar " + KEY_INPUT + " <input> " + KEY_OUTPUT + " <output>\n");
+        System.out.println("Usage: pagerank.jar [generic options] " + KEY_INPUT + " <input> " + KEY_OUTPUT + " <output>\n");
         System.out.println("Options:\n");
         System.out.println("    " + KEY_INPUT + "    (" + KEY_INPUT_ALIAS + ")    <input>       The directory of the input graph [REQUIRED]");
         System.out.println("    " + KEY_OUTPUT + "   (" + KEY_OUTPUT_ALIAS + ")    <output>      The directory of the output result [REQUIRED]");
         System.out.println("    " + KEY_DAMPING + "  (" + KEY_DAMPING_ALIAS + ")    <damping>     The damping factor [OPTIONAL]");
         System.out.println("    " + KEY_COUNT + "    (" + KEY_COUNT_ALIAS + ")    <iterations>  The amount of iterations [OPTIONAL]");
         System.out.println("    " + KEY_HELP + "     (" + KEY_HELP_ALIAS + ")                  Display the help text\n");
+        System.out.println("Configuration (generic options: -D <key>=<value>):\n");
+        System.out.println("    " + CONF_DAMPING + "          The damping factor, used when " + KEY_DAMPING + " is not given [DEFAULT: " + DEFAULT_DAMPING + "]");
+        System.out.println("    " + CONF_AUTO_MODE + "        Run small jobs in local or uber mode [DEFAULT: " + DEFAULT_AUTO_MODE + "]");
+        System.out.println("    " + CONF_LOCAL_MAX_BYTES + "  Max input bytes to run in local mode [DEFAULT: " + DEFAULT_LOCAL_MAX_BYTES + "]");
+        System.out.println("    " + CONF_UBER_MAX_BYTES + "   Max input bytes to run in uber mode [DEFAULT: " + DEFAULT_UBER_MAX_BYTES + "]\n");
     }
     
 }
\ No newline at end of file
@@ -40,27 +40,35 @@ public class PageRankJob1Reducer extends Reducer<Text, Text, Text, Text> {
     public void reduce(Text key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
         
         /* Job#1 reducer will scroll all the nodes pointed by the given "key" node, constructing a
-         * comma separated list of values and initializing the page rank for the "key" node.
-         * Output format is the following (separator is TAB):
+         * comma separated list of values. Output format is the following (separator is TAB):
          * 
          *     <title>    <page-rank>    <link1>,<link2>,<link3>,<link4>,...,<linkN>
          *     
          * As for the pagerank initial value, early version of the PageRank algorithm used 1.0 as default, 
          * however later versions of PageRank assume a probability distribution between 0 and 1, hence the 
-         * initial valus is set to DAMPING FACTOR / TOTAL NODES for each node in the graph.   
+         * initial valus is set to DAMPING FACTOR / TOTAL NODES for each node in the graph.
+         * The total amount of nodes is only known once this job is completed (every distinct node is a key
+         * here and increases the NODES counter), so the page rank is left empty and set by Job#2 mapper.
          */
         
+        context.getCounter(PageRank.Counter.NODES).increment(1);
+        
         boolean first = true;
-        String links = (PageRank.DAMPING / PageRank.NODES.size()) + "\t";
+        String links = "\t";
 
         for (Text value : values) {
+            // skip the empty value emitted for the target nodes
+            if (value.getLength() == 0)
+                continue;
             if (!first) 
                 links += ",";
             links += value.toString();
             first = false;
         }
-
-        context.write(key, new Text(links));
+        
+        // nodes with no outlinks are only counted
+        if (!first)
+            context.write(key, new Text(links));
     }
 
 }
@@ -37,6 +37,20 @@ import java.io.IOException;
 
 public class PageRankJob2Mapper extends Mapper<LongWritable, Text, Text, Text> {
     
+    private String initialPageRank;
+    
+    @Override
+    public void setup(Context context) throws IOException {
+        // total nodes are given by the driver after Job#1 (only needed by the first iteration)
+        String nodes = context.getConfiguration().get(PageRank.CONF_NODES);
+        if (nodes != null) {
+            if (Long.parseLong(nodes) <= 0)
+                throw new IOException("invalid " + PageRank.CONF_NODES + ": " + nodes);
+            double damping = context.getConfiguration().getDouble(PageRank.CONF_DAMPING, PageRank.DEFAULT_DAMPING);
+            initialPageRank = String.valueOf(damping / Long.parseLong(nodes));
+        }
+    }
+    
     @Override
     public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
         
@@ -54,6 +68,8 @@ public class PageRankJob2Mapper extends Mapper<LongWritable, Text, Text, Text> {
          * and the total amount of out links of the source page:
          *  
          *     <link>    <page-rank>    <total-links>
+         *
+         * On the first iteration the page rank is empty (see Job#1 reducer) and it's initialized here.
          */
         
         int tIdx1 = value.find("\t");
@@ -64,6 +80,12 @@ public class PageRankJob2Mapper extends Mapper<LongWritable, Text, Text, Text> {
         String pageRank = Text.decode(value.getBytes(), tIdx1 + 1, tIdx2 - (tIdx1 + 1));
         String links = Text.decode(value.getBytes(), tIdx2 + 1, value.getLength() - (tIdx2 + 1));
         
+        if (pageRank.isEmpty()) {
+            if (initialPageRank == null)
+                throw new IOException("missing " + PageRank.CONF_NODES + ": cannot compute the initial page rank");
+            pageRank = initialPageRank;
+        }
+        
         String[] allOtherPages = links.split(",");
         for (String otherPage : allOtherPages) { 
             Text pageRankWithTotalLinks = new Text(pageRank + "\t" + allOtherPages.length);
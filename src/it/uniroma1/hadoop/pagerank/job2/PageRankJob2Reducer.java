@@ -36,6 +36,14 @@ import org.apache.hadoop.mapreduce.Reducer;
 
 public class PageRankJob2Reducer extends Reducer<Text, Text, Text, Text> {
     
+    private double damping;
+    
+    @Override
+    public void setup(Context context) {
+        // damping factor is given by the driver
+        damping = context.getConfiguration().getDouble(PageRank.CONF_DAMPING, PageRank.DEFAULT_DAMPING);
+    }
+    
     @Override
     public void reduce(Text key, Iterable<Text> values, Context context) throws IOException, 
                                                                                 InterruptedException {
@@ -81,7 +89,7 @@ public class PageRankJob2Reducer extends Reducer<Text, Text, Text, Text> {
 
         }
         
-        double newRank = PageRank.DAMPING * sumShareOtherPageRanks + (1 - PageRank.DAMPING);
+        double newRank = damping * sumShareOtherPageRanks + (1 - damping);
         context.write(key, new Text(newRank + "\t" + links));
         
     }